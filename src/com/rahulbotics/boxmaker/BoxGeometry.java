@@ -0,0 +1,289 @@
+/*
+ * Computes the notched outlines of the six faces of a box
+ *
+ */
+package com.rahulbotics.boxmaker;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Works out the line segments for every face of a box, without drawing anything.
+ * The faces are independent of each other, so they are computed in parallel on a
+ * fork/join pool and handed back in their layout order; whoever draws them just
+ * walks the array, which keeps the output the same as doing it all in sequence.
+ */
+class BoxGeometry {
+
+    // how many faces a box has
+    static final int FACE_COUNT = 6;
+    // the space left around and between the faces
+    static final double MARGIN = 0.5;
+    // the names of the faces, in the order they get laid out and drawn
+    static final String[] FACE_NAMES = { "back", "left", "bottom", "right", "front", "top" };
+
+    /**
+     * One laid-out face of the box: where it sits on the page and its four edges
+     * (top, bottom, left, right).
+     */
+    static class Face {
+        final String name;
+        final double xOrig, yOrig;
+        final double width, height;
+        final EdgePath[] edges;
+
+        Face(String name, double xOrig, double yOrig, double width, double height,
+             EdgePath[] edges) {
+            this.name = name;
+            this.xOrig = xOrig;
+            this.yOrig = yOrig;
+            this.width = width;
+            this.height = height;
+            this.edges = edges;
+        }
+    }
+
+    /**
+     * @return	the width of the whole layout of faces, including margins
+     */
+    static double layoutWidth(Box box, double margin) {
+        return box.depth * 2 + box.width + margin*4;
+    }
+
+    /**
+     * @return	the height of the whole layout of faces, including margins
+     */
+    static double layoutHeight(Box box, double margin) {
+        return box.height * 2 + box.depth * 2 + margin*5;
+    }
+
+    /**
+     * Compute all the faces of the box in parallel.  The face tasks run on the
+     * common fork/join pool (or the caller's pool, if it is already in one).
+     * @param box		the box
+     * @param margin	the space to leave between faces
+     * @return			the faces, in the order they should be drawn
+     */
+    static Face[] computeFaces(Box box, double margin) {
+        FaceTask[] tasks = new FaceTask[FACE_COUNT];
+        for (int i = 0; i < FACE_COUNT; i++) {
+            tasks[i] = new FaceTask(box, margin, i);
+        }
+        ForkJoinTask.invokeAll(tasks);
+        Face[] faces = new Face[FACE_COUNT];
+        for (int i = 0; i < FACE_COUNT; i++) {
+            faces[i] = tasks[i].join();
+        }
+        return faces;
+    }
+
+    /**
+     * Computes a single face
+     */
+    private static class FaceTask extends RecursiveTask<Face> {
+        private static final long serialVersionUID = 1L;
+
+        private final Box box;
+        private final double margin;
+        private final int index;
+
+        FaceTask(Box box, double margin, int index) {
+            this.box = box;
+            this.margin = margin;
+            this.index = index;
+        }
+
+        @Override
+        protected Face compute() {
+            return computeFace(box, margin, index);
+        }
+    }
+
+    /**
+     * Compute one face of the box.  The faces are numbered in the order they
+     * get drawn: back, left, bottom, right, front, top.
+     * @param box		the box
+     * @param margin	the space to leave between faces
+     * @param index		which face to compute
+     * @return			the face with all four edges filled in
+     */
+    static Face computeFace(Box box, double margin, int index) {
+        double xOrig, yOrig;
+        double k = box.kerf/2;
+
+        // compensate for the cut width (in part) by increasing mwidth (eolson)
+        // no, don't do that, because the cut widths cancel out. (eolson)
+        //	    mwidth+=box.kerf/2;
+
+        switch (index) {
+        case 0: //1. a W x H side (the back)
+            xOrig = box.depth + margin*2;
+            yOrig = margin;
+            return new Face(FACE_NAMES[0], xOrig, yOrig, box.width, box.height, new EdgePath[] {
+                horizontalEdge(box, xOrig,yOrig,box.notchLengthW,box.numNotchesW,k,false,false, false),					//top
+                horizontalEdge(box, xOrig,yOrig+box.height-box.thickness,box.notchLengthW,box.numNotchesW, k,true,false, false),	//bottom
+                verticalEdge(box, xOrig,yOrig,box.notchLengthH,box.numNotchesH, k,false,false),					//left
+                verticalEdge(box, xOrig+box.width-box.thickness,yOrig,box.notchLengthH,box.numNotchesH, -k,false,false)	//right
+            });
+        case 1: //2. a D x H side (the left side)
+            xOrig = margin;
+            yOrig = box.height + margin*2;
+            return new Face(FACE_NAMES[1], xOrig, yOrig, box.depth, box.height, new EdgePath[] {
+                horizontalEdge(box, xOrig,yOrig,box.notchLengthD,box.numNotchesD, k,false,false, false),					//top
+                horizontalEdge(box, xOrig,yOrig+box.height-box.thickness,box.notchLengthD,box.numNotchesD, k,true,false, false),	//bottom
+                verticalEdge(box, xOrig,yOrig,box.notchLengthH,box.numNotchesH, k,false,false),					//left
+                verticalEdge(box, xOrig+box.depth-box.thickness,yOrig,box.notchLengthH,box.numNotchesH, -k,false,false)	//right
+            });
+        case 2: //3. a W x D side (the bottom)
+            xOrig = box.depth + margin*2;
+            yOrig = box.height + margin*2;
+            return new Face(FACE_NAMES[2], xOrig, yOrig, box.width, box.depth, new EdgePath[] {
+                horizontalEdge(box, xOrig,yOrig,box.notchLengthW,box.numNotchesW, -k,true,true, false),				//top
+                horizontalEdge(box, xOrig,yOrig+box.depth-box.thickness,box.notchLengthW,box.numNotchesW, -k,false,true, false),	//bottom
+                verticalEdge(box, xOrig,yOrig,box.notchLengthD,box.numNotchesD, -k,true,true),				//left
+                verticalEdge(box, xOrig+box.width-box.thickness,yOrig,box.notchLengthD,box.numNotchesD, -k,false,true)	//right
+            });
+        case 3: //4. a D x H side (the right side)
+            xOrig = box.depth + box.width + margin*3;
+            yOrig = box.height + margin*2;
+            return new Face(FACE_NAMES[3], xOrig, yOrig, box.depth, box.height, new EdgePath[] {
+                horizontalEdge(box, xOrig,yOrig,box.notchLengthD,box.numNotchesD, k,false,false, false),					//top
+                horizontalEdge(box, xOrig,yOrig+box.height-box.thickness,box.notchLengthD,box.numNotchesD, k,true,false, false),	//bottom
+                verticalEdge(box, xOrig,yOrig,box.notchLengthH,box.numNotchesH, k,false,false),					//left
+                verticalEdge(box, xOrig+box.depth-box.thickness,yOrig,box.notchLengthH,box.numNotchesH, -k,false,false)	//right
+            });
+        case 4: //5. a W x H side (the front)
+            xOrig = box.depth + margin*2;
+            yOrig = box.height + box.depth+ margin*3;
+            return new Face(FACE_NAMES[4], xOrig, yOrig, box.width, box.height, new EdgePath[] {
+                horizontalEdge(box, xOrig,yOrig,box.notchLengthW,box.numNotchesW, k,false,false, false),					//top
+                horizontalEdge(box, xOrig,yOrig+box.height-box.thickness,box.notchLengthW,box.numNotchesW, k,true,false, false),	//bottom
+                verticalEdge(box, xOrig,yOrig,box.notchLengthH,box.numNotchesH, k,false,false),					//left
+                verticalEdge(box, xOrig+box.width-box.thickness,yOrig,box.notchLengthH,box.numNotchesH, -k,false,false)	//right
+            });
+        case 5: //6. a W x D side (the top)
+            xOrig = box.depth + margin*2;
+            yOrig = box.height*2 + box.depth + margin*4;
+            return new Face(FACE_NAMES[5], xOrig, yOrig, box.width, box.depth, new EdgePath[] {
+                horizontalEdge(box, xOrig,                     yOrig,                     box.notchLengthW, box.numNotchesW, -k, true,  true, true), //top
+                horizontalEdge(box, xOrig,                     yOrig + box.depth - box.thickness, box.notchLengthW, box.numNotchesW, -k, false, true, true),	//bottom
+                verticalEdge  (box, xOrig,                     yOrig,                     box.notchLengthD, box.numNotchesD, -k, true,  true), //left
+                verticalEdge  (box, xOrig + box.width - box.thickness, yOrig,                     box.notchLengthD, box.numNotchesD, -k, false, true)	//right
+            });
+        default:
+            throw new IllegalArgumentException("No such face: "+index);
+        }
+    }
+
+	/**
+     * Compute one horizontal notched line
+     * @param x0			x-coord of the starting point of the line (lower left corner)
+     * @param y0			y-coord of the starting point of the line (lower left corner)
+     * @param notchWidth	the width of each notch to draw in millimeters
+     * @param notchCount	the number of notches to draw along the edge
+     * @param cutwidth		the width of the laser beam to compensate for
+     * @param flip			should the first line (at x0,y0) be out or in
+     * @param smallside		should this stop short of the full height or not
+     * @param tabs          should include tabs for opening
+     * @return				the segments of the edge
+     */
+    static EdgePath horizontalEdge(Box box,
+                                   double x0, double y0,
+                                   double notchWidth,
+                                   int notchCount,
+                                   double cutwidth,
+                                   boolean flip, boolean smallside,
+                                   boolean tabs){
+    	double x = x0, y = y0;
+    	EdgePath edge = new EdgePath("Horizonal side: "+notchCount+" steps @ ( "+x0+" , "+y0+" )",
+    	                             notchCount*2);
+
+        for (int step = 0; step < notchCount; step++)
+        {
+            double height = box.thickness;
+            // XXX - Figure this bit out - if (tabs && step == 1) height *= 1.5;
+
+            y = (((step % 2) == 0) ^ flip) ? y0 : y0 + height;
+
+			if (step == 0) {		//start first edge in the right place
+			    if (smallside) {
+                    edge.addLine(x + height, y,
+                                 x + notchWidth + cutwidth, y);
+                } else {
+                    edge.addLine(x, y,
+                                 x + notchWidth + cutwidth, y);
+                }
+			} else if (step == (notchCount - 1)) {	//shorter last edge
+			    edge.addLine(x - cutwidth, y,
+                             x + notchWidth - height, y);
+			} else if (step % 2 == 0) {
+			    edge.addLine(x - cutwidth, y,
+                             x + notchWidth + cutwidth, y);
+		    } else {
+			    edge.addLine(x + cutwidth, y,
+                             x + notchWidth - cutwidth, y);
+		    }
+
+			if (step < (notchCount - 1)) {
+			    if (step % 2 == 0) {
+					edge.addLine(x + notchWidth + cutwidth, y0 + height,
+                                 x + notchWidth + cutwidth, y0);
+			    } else {
+					edge.addLine(x + notchWidth - cutwidth, y0 + height,
+                                 x + notchWidth - cutwidth, y0);
+			    }
+			}
+
+			x = x + notchWidth;
+		}
+        return edge;
+    }
+
+    /**
+     * Compute one vertical notched line
+     * @param x0			x-coord of the starting point of the line (lower left corner)
+     * @param y0			y-coord of the starting point of the line (lower left corner)
+     * @param notchWidth	the width of each notch to draw in millimeters
+     * @param notchCount	the number of notches to draw along the edge
+     * @param cutwidth		the width of the laser beam to compensate for
+     * @param flip			should the first line (at x0,y0) be out or in
+     * @param smallside		should this stop short of the full height or not
+     * @return				the segments of the edge
+     */
+    static EdgePath verticalEdge(Box box,
+                                 double x0, double y0,
+                                 double notchWidth, int notchCount,
+                                 double cutwidth,
+                                 boolean flip, boolean smallside){
+		double x=x0,y=y0;
+		EdgePath edge = new EdgePath("Vertical side: "+notchCount+" steps @ ( "+x0+" , "+y0+" )",
+		                             notchCount*2);
+
+		for (int step=0;step<notchCount;step++) {
+			x=(((step%2)==0)^flip) ? x0 : x0+box.thickness;
+
+			if (step==0) {
+				if(smallside) edge.addLine(x,y+box.thickness,x,y+notchWidth+cutwidth);
+			    else edge.addLine(x,y,x,y+notchWidth+cutwidth);
+			} else if (step==(notchCount-1)) {
+			    //g.moveTo(x,y+cutwidth); g.lineTo(x,y+notchWidth); g.stroke();
+				if(smallside) edge.addLine(x,y-cutwidth,x,y+notchWidth-box.thickness);
+			    else edge.addLine(x,y-cutwidth,x,y+notchWidth);
+			} else if (step%2==0) {
+			    edge.addLine(x,y-cutwidth,x,y+notchWidth+cutwidth);
+			} else {
+			    edge.addLine(x,y+cutwidth,x,y+notchWidth-cutwidth);
+			}
+
+			if (step<(notchCount-1)) {
+			    if (step%2==0) {
+			    	edge.addLine(x0+box.thickness,y+notchWidth+cutwidth,x0,y+notchWidth+cutwidth);
+			    } else {
+			    	edge.addLine(x0+box.thickness,y+notchWidth-cutwidth,x0,y+notchWidth-cutwidth);
+			    }
+			}
+			y=y+notchWidth;
+		}
+		return edge;
+    }
+}
@@ -1,6 +1,11 @@
 package com.rahulbotics.boxmaker;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.lowagie.text.DocumentException;
 
@@ -24,6 +29,23 @@ public class BoxMaker {
     double kerf = 0;
     double notchLength = 0;
 
+    String patternName = null;
+    String patternFaces = "back,left,bottom,right,front,top";
+    double patternSize = 0;
+    double patternSpacing = 0;
+
+    boolean reproducible = false;
+    boolean hashOnly = false;
+
+    DocumentOutput.Options output = new DocumentOutput.Options();
+
+    boolean fitAnalysis = false;
+    FitAnalysis.Tolerances tolerances = new FitAnalysis.Tolerances();
+
+    int thumbnailWidth = 0;
+    int thumbnailHeight = 0;
+    String thumbnailCacheDir = null;
+
     boolean drawBoundingBox = false;
     boolean internalDimensions = false;
     boolean inMetric = false;
@@ -73,22 +95,101 @@ public class BoxMaker {
             thickness   *= Renderer.INCH_PER_MM;
             kerf    *= Renderer.INCH_PER_MM;
             notchLength *= Renderer.INCH_PER_MM;
+            patternSize    *= Renderer.INCH_PER_MM;
+            patternSpacing *= Renderer.INCH_PER_MM;
+            tolerances.thicknessSigma *= Renderer.INCH_PER_MM;
+            tolerances.kerfMean       *= Renderer.INCH_PER_MM;
+            tolerances.kerfSigma      *= Renderer.INCH_PER_MM;
+            tolerances.dimensionSigma *= Renderer.INCH_PER_MM;
+            tolerances.pressLimit     *= Renderer.INCH_PER_MM;
+            tolerances.slipLimit      *= Renderer.INCH_PER_MM;
+        }
+
+        if (fitAnalysis) {
+            /* Just report how well the joints are likely to fit */
+            long start = System.nanoTime();
+            FitAnalysis.Result[] results = null;
+            try {
+                results = FitAnalysis.analyze(width, height, depth, thickness, kerf, notchLength,
+                                              tolerances);
+            } catch (IllegalArgumentException e) {
+                System.out.println("ERROR!" + e.getMessage());
+                System.exit(1);
+            }
+            System.out.print(FitAnalysis.report(results,
+                                                inMetric ? Renderer.MM_PER_INCH : 1,
+                                                inMetric ? "mm" : "in"));
+            System.out.println(tolerances.trials + " trials per notch length in " +
+                               (System.nanoTime() - start) / 1000000 + " ms");
+            return;
         }
 
         /* Construct the box */
         Box box = new Box(width, height, depth,
                           thickness, kerf, notchLength);
+
+        /* Work out which faces get a cut pattern */
+        Map<String,FacePattern> patterns = new HashMap<String,FacePattern>();
+        if (patternName != null) {
+            try {
+                FacePattern pattern = FacePattern.named(patternName, thickness, kerf,
+                                                        patternSize, patternSpacing);
+                for (String face : patternFaces.split(",")) {
+                    face = face.trim();
+                    if (!Arrays.asList(BoxGeometry.FACE_NAMES).contains(face)) {
+                        throw new IllegalArgumentException("Unknown face: " + face);
+                    }
+                    patterns.put(face, pattern);
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("ERROR!" + e.getMessage());
+                System.exit(1);
+            }
+        }
+        
+        Renderer.Options renderOptions = new Renderer.Options();
+        renderOptions.drawBoundingBox = drawBoundingBox;
+        renderOptions.specifiedInInches = !inMetric;
+        renderOptions.patterns = patterns;
+        renderOptions.reproducible = reproducible;
+        renderOptions.output = output;
+
+        if (hashOnly || (reproducible && thumbnailWidth == 0)) {
+            /* Callers can look this up to see if they already have the file (the
+               hash is of the PDF, so a PNG preview doesn't get one) */
+            System.out.println("Content hash: " + Renderer.contentHash(box, renderOptions));
+            if (hashOnly) return;
+        }
         
+        if (thumbnailWidth > 0) {
+            /* Draw a PNG preview instead of the PDF */
+            try {
+                ThumbnailCache cache = new ThumbnailCache(ThumbnailCache.DEFAULT_MAX_BYTES,
+                    (thumbnailCacheDir != null) ? new File(thumbnailCacheDir) : null);
+                byte[] png = cache.get(box, thumbnailWidth, thumbnailHeight, patterns);
+                DocumentOutput.writeFile(filePath, output, png);
+            } catch (IOException e) {
+                System.out.println("ERROR!" + e.toString());
+                System.exit(1);
+            } catch (IllegalArgumentException e) {
+                System.out.println("ERROR!" + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
         // try to render it, don't do any error handling (file won't get created)
         try {
-            Renderer.render(filePath, box,
-                            drawBoundingBox, !inMetric);
+            Renderer.render(filePath, box, renderOptions);
         } catch (FileNotFoundException e) {
             System.out.println("ERROR!" + e.toString());
             System.exit(1);
         } catch (DocumentException e) {
             System.out.println("ERROR!" + e.toString());
             System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.out.println("ERROR!" + e.getMessage());
+            System.exit(1);
         }
     }
 
@@ -108,6 +209,41 @@ public class BoxMaker {
                        "Draw bounding box");
 
         opts.addOption("f", "file", true, "Output file");
+        opts.addOption("r", "reproducible", false,
+                       "Write the same bytes every time for the same box");
+        opts.addOption(null, "hash", false,
+                       "Just print the content hash of the PDF, don't render it");
+
+        opts.addOption(null, "thumbnail", true,
+                       "Write a PNG preview of the given pixel size (N or WxH) instead of a PDF");
+        opts.addOption(null, "thumbnailcache", true,
+                       "Directory to keep PNG previews in, so they are only drawn once");
+
+        opts.addOption(null, "fit", false,
+                       "Analyze how well the joints will fit instead of rendering");
+        opts.addOption(null, "trials", true, "Fit analysis trials (default 20000)");
+        opts.addOption(null, "thicknesssigma", true,
+                       "Standard deviation of the material thickness");
+        opts.addOption(null, "kerfmean", true,
+                       "Average cut width of the laser (default the cut width)");
+        opts.addOption(null, "kerfsigma", true, "Standard deviation of the cut width");
+        opts.addOption(null, "dimsigma", true,
+                       "Standard deviation of where each cut lands");
+        opts.addOption(null, "presslimit", true,
+                       "Most interference that still presses together");
+        opts.addOption(null, "sliplimit", true,
+                       "Most clearance that still holds together");
+
+        opts.addOption(null, "buffer", true,
+                       "Output write buffer size in KB (default 64)");
+        opts.addOption(null, "channel", false,
+                       "Write the output with a FileChannel");
+        opts.addOption(null, "atomic", false,
+                       "Write to a temporary file and rename it into place");
+        opts.addOption(null, "fsync", true,
+                       "When to fsync the output (none, close or dir)");
+        opts.addOption(null, "iostats", false,
+                       "Print output write counts and timing");
 
         opts.addOption("W", "width", true, "width of box");
         opts.addOption("H", "height", true, "height of box");
@@ -116,6 +252,13 @@ public class BoxMaker {
         opts.addOption("T", "thickness", true, "Material thickness");
         opts.addOption("k", "kerf", true, "Cut width");
         opts.addOption("n", "notchlength", true, "Notch length");
+
+        opts.addOption("p", "pattern", true,
+                       "Cut pattern to fill faces with (hinge, vhinge or vent)");
+        opts.addOption(null, "patternfaces", true,
+                       "Comma separated faces to fill (back,left,bottom,right,front,top)");
+        opts.addOption(null, "patternsize", true, "Pattern cut length");
+        opts.addOption(null, "patternspacing", true, "Pattern row spacing");
         
         return opts;
     }
@@ -156,13 +299,115 @@ public class BoxMaker {
                 drawBoundingBox = true;
             }
 
+            if (commandLine.hasOption("reproducible")) {
+                reproducible = true;
+            }
+
+            if (commandLine.hasOption("hash")) {
+                hashOnly = true;
+            }
+
+            if (commandLine.hasOption("fit")) {
+                fitAnalysis = true;
+            }
+
             if (commandLine.hasOption("file")) {
                 filePath = commandLine.getOptionValue("file");
-            } else {
+            } else if (!hashOnly && !fitAnalysis) {
                 System.err.println("Must specify output file");
                 printOptionsHelp(opts);
             }
 
+            if (commandLine.hasOption("thumbnail")) {
+                String size = commandLine.getOptionValue("thumbnail");
+                int x = size.indexOf('x');
+                if (x < 0) {
+                    thumbnailWidth = thumbnailHeight = Integer.parseInt(size);
+                } else {
+                    thumbnailWidth = Integer.parseInt(size.substring(0, x));
+                    thumbnailHeight = Integer.parseInt(size.substring(x + 1));
+                }
+                if (thumbnailWidth <= 0 || thumbnailHeight <= 0) {
+                    System.err.println("Thumbnail size must be positive");
+                    printOptionsHelp(opts);
+                }
+            }
+
+            if (commandLine.hasOption("thumbnailcache")) {
+                thumbnailCacheDir = commandLine.getOptionValue("thumbnailcache");
+            }
+
+            if (commandLine.hasOption("trials")) {
+                tolerances.trials =
+                    Integer.parseInt(commandLine.getOptionValue("trials"));
+            }
+
+            if (commandLine.hasOption("thicknesssigma")) {
+                tolerances.thicknessSigma =
+                    Double.parseDouble(commandLine.getOptionValue("thicknesssigma"));
+            }
+
+            if (commandLine.hasOption("kerfmean")) {
+                tolerances.kerfMean =
+                    Double.parseDouble(commandLine.getOptionValue("kerfmean"));
+            }
+
+            if (commandLine.hasOption("kerfsigma")) {
+                tolerances.kerfSigma =
+                    Double.parseDouble(commandLine.getOptionValue("kerfsigma"));
+            }
+
+            if (commandLine.hasOption("dimsigma")) {
+                tolerances.dimensionSigma =
+                    Double.parseDouble(commandLine.getOptionValue("dimsigma"));
+            }
+
+            if (commandLine.hasOption("presslimit")) {
+                tolerances.pressLimit =
+                    Double.parseDouble(commandLine.getOptionValue("presslimit"));
+            }
+
+            if (commandLine.hasOption("sliplimit")) {
+                tolerances.slipLimit =
+                    Double.parseDouble(commandLine.getOptionValue("sliplimit"));
+            }
+
+            if (commandLine.hasOption("buffer")) {
+                int kb = Integer.parseInt(commandLine.getOptionValue("buffer"));
+                if (kb <= 0 || kb > DocumentOutput.Options.MAX_BUFFER_SIZE / 1024) {
+                    System.err.println("Buffer size must be between 1 and " +
+                                       DocumentOutput.Options.MAX_BUFFER_SIZE / 1024 + " KB");
+                    printOptionsHelp(opts);
+                }
+                output.bufferSize = 1024 * kb;
+            }
+
+            if (commandLine.hasOption("channel")) {
+                output.useChannel = true;
+            }
+
+            if (commandLine.hasOption("atomic")) {
+                output.atomicRename = true;
+            }
+
+            if (commandLine.hasOption("fsync")) {
+                String sync = commandLine.getOptionValue("fsync");
+                if (sync.equals("none")) {
+                    output.sync = DocumentOutput.SyncPolicy.NONE;
+                } else if (sync.equals("close")) {
+                    output.sync = DocumentOutput.SyncPolicy.CLOSE;
+                } else if (sync.equals("dir")) {
+                    output.sync = DocumentOutput.SyncPolicy.DIRECTORY;
+                } else {
+                    System.err.println("Unknown fsync policy: " + sync);
+                    printOptionsHelp(opts);
+                }
+            }
+
+            if (commandLine.hasOption("iostats")) {
+                output.reportStats = true;
+            }
+
             if (commandLine.hasOption("width")) {
                 width =
                     Double.parseDouble(commandLine.getOptionValue("width"));
@@ -205,6 +450,24 @@ public class BoxMaker {
                     Double.parseDouble(commandLine.getOptionValue("notchlength"));
             }
 
+            if (commandLine.hasOption("pattern")) {
+                patternName = commandLine.getOptionValue("pattern");
+            }
+
+            if (commandLine.hasOption("patternfaces")) {
+                patternFaces = commandLine.getOptionValue("patternfaces");
+            }
+
+            if (commandLine.hasOption("patternsize")) {
+                patternSize =
+                    Double.parseDouble(commandLine.getOptionValue("patternsize"));
+            }
+
+            if (commandLine.hasOption("patternspacing")) {
+                patternSpacing =
+                    Double.parseDouble(commandLine.getOptionValue("patternspacing"));
+            }
+
         } catch (ParseException parseException) // checked exception
         {
             System.err.println(
@@ -0,0 +1,274 @@
+/*
+ * The output stream the rendered document is written through
+ *
+ */
+package com.rahulbotics.boxmaker;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Collects the many small writes iText makes into big batches before they go to
+ * the disk, which matters a lot on network mounted drives.  It can also write to a
+ * temporary file and rename it into place when done (so nobody ever sees half a
+ * file), and fsync the file before it is closed.  It keeps count of how many
+ * writes actually went to the OS and how long they took, so the settings can be
+ * tuned for each kind of disk.
+ */
+class DocumentOutput extends OutputStream {
+
+    /** When to force the file out to the disk */
+    enum SyncPolicy {
+        /** leave it to the OS */
+        NONE,
+        /** fsync the file before closing it */
+        CLOSE,
+        /** fsync the file, then its directory so the new name (or the rename) sticks too */
+        DIRECTORY
+    }
+
+    /**
+     * The settings for writing the document.  The defaults just add a write buffer.
+     */
+    static class Options {
+        // the biggest write buffer allowed
+        static final int MAX_BUFFER_SIZE = 256 * 1024 * 1024;
+
+        // how many bytes to collect before writing them out
+        int bufferSize = 64 * 1024;
+        // write with a FileChannel instead of a FileOutputStream
+        boolean useChannel = false;
+        // write to a temporary file and rename it over the real one when done
+        boolean atomicRename = false;
+        // when to fsync
+        SyncPolicy sync = SyncPolicy.NONE;
+        // print out the write counts and timing when done
+        boolean reportStats = false;
+    }
+
+    private final Options options;
+    // the file the caller asked for, and the one we are actually writing
+    private final File target, writing;
+    private final FileOutputStream fileOut;
+    private final FileChannel channel;
+
+    private final byte[] buffer;
+    private int buffered = 0;
+    private boolean closed = false;
+    // a write to the OS failed, so the file must not be committed
+    private boolean failed = false;
+
+    // what actually got handed to the OS
+    private long bytesWritten = 0;
+    private long writeCalls = 0;
+    private long syncCalls = 0;
+    private long ioNanos = 0;
+    private final long openedNanos;
+
+    /**
+     * Open the output
+     * @param filePath	the file to end up with
+     * @param options	how to write it
+     * @throws FileNotFoundException
+     */
+    DocumentOutput(String filePath, Options options) throws FileNotFoundException {
+        if (options.bufferSize <= 0 || options.bufferSize > Options.MAX_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Write buffer size must be between 1 and "+
+                                               Options.MAX_BUFFER_SIZE+" bytes: "+options.bufferSize);
+        }
+        this.options = options;
+        openedNanos = System.nanoTime();
+        target = new File(filePath).getAbsoluteFile();
+        if (options.atomicRename) {
+            try {
+                writing = File.createTempFile("." + target.getName() + ".", ".tmp",
+                                              target.getParentFile());
+            } catch (IOException e) {
+                throw new FileNotFoundException("Can't create temporary file next to " +
+                                                target + ": " + e.getMessage());
+            }
+        } else {
+            writing = target;
+        }
+        fileOut = new FileOutputStream(writing);
+        channel = options.useChannel ? fileOut.getChannel() : null;
+        buffer = new byte[options.bufferSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (buffered == buffer.length) flushBuffer();
+        buffer[buffered++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= buffer.length) {
+            // too big to be worth copying, send it straight out
+            flushBuffer();
+            writeOut(b, off, len);
+            return;
+        }
+        if (len > buffer.length - buffered) flushBuffer();
+        System.arraycopy(b, off, buffer, buffered, len);
+        buffered += len;
+    }
+
+    /**
+     * Only pushes the buffer out, it doesn't fsync (that is what the SyncPolicy is for)
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (buffered > 0) {
+            writeOut(buffer, 0, buffered);
+            buffered = 0;
+        }
+    }
+
+    private void writeOut(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (channel != null) {
+                ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+                while (bb.hasRemaining()) {
+                    channel.write(bb);
+                    writeCalls++;
+                }
+            } else {
+                fileOut.write(b, off, len);
+                writeCalls++;
+            }
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+        bytesWritten += len;
+        ioNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Finish the file: write out what is left, fsync it if asked to, and move it
+     * into place.  If anything goes wrong the temporary file is removed.  If an
+     * earlier write failed nothing is committed, and this throws.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        if (failed) {
+            abort();
+            throw new IOException("Not saving " + target + ", an earlier write to it failed");
+        }
+        closed = true;
+        boolean done = false;
+        try {
+            flushBuffer();
+            if (options.sync != SyncPolicy.NONE) {
+                long start = System.nanoTime();
+                fileOut.getFD().sync();
+                syncCalls++;
+                ioNanos += System.nanoTime() - start;
+            }
+            fileOut.close();
+            if (writing != target) {
+                long start = System.nanoTime();
+                Files.move(writing.toPath(), target.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                ioNanos += System.nanoTime() - start;
+            }
+            if (options.sync == SyncPolicy.DIRECTORY) {
+                long start = System.nanoTime();
+                syncDirectory(target.getParentFile());
+                ioNanos += System.nanoTime() - start;
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                fileOut.close();
+                if (writing != target) writing.delete();
+            }
+        }
+        if (options.reportStats) System.out.println(stats());
+    }
+
+    /**
+     * Give up on the file: close it without committing, and remove the temporary
+     * file if there is one (without one, the half written file is left as is).
+     * Does nothing if the output is already closed.
+     */
+    void abort() {
+        if (closed) return;
+        closed = true;
+        try {
+            fileOut.close();
+        } catch (IOException e) {
+            // we're throwing the file away anyway
+        }
+        if (writing != target) writing.delete();
+    }
+
+    /**
+     * Write a whole file in one go, aborting (so nothing half written gets renamed
+     * into place) if the write fails.
+     * @param filePath	the file to end up with
+     * @param options	how to write it
+     * @param contents	everything that goes in the file
+     * @throws IOException
+     */
+    static void writeFile(String filePath, Options options, byte[] contents) throws IOException {
+        DocumentOutput out = new DocumentOutput(filePath, options);
+        boolean written = false;
+        try {
+            out.write(contents);
+            written = true;
+        } finally {
+            if (!written) out.abort();
+        }
+        out.close();
+    }
+
+    /**
+     * fsync a directory, so a rename in it is on the disk.  Not every platform lets
+     * you open a directory, in which case this quietly does nothing.
+     */
+    private void syncDirectory(File dir) {
+        try {
+            FileChannel dirChannel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+            try {
+                dirChannel.force(true);
+                syncCalls++;
+            } finally {
+                dirChannel.close();
+            }
+        } catch (IOException e) {
+            // e.g. Windows, where directories can't be opened
+        }
+    }
+
+    /**
+     * @return	a one line summary of the writing that was done
+     */
+    String stats() {
+        double ioMs = ioNanos / 1e6;
+        double totalMs = (System.nanoTime() - openedNanos) / 1e6;
+        double mbPerSec = (ioNanos > 0) ? (bytesWritten / 1048576.0) / (ioNanos / 1e9) : 0;
+        return "Output: " + bytesWritten + " bytes in " + writeCalls + " writes, " +
+               syncCalls + " syncs, " + String.format("%.2f", ioMs) + " ms in I/O (" +
+               String.format("%.1f", mbPerSec) + " MB/s), " +
+               String.format("%.2f", totalMs) + " ms open, buffer " + buffer.length +
+               (channel != null ? ", channel" : ", stream") +
+               (writing != target ? ", atomic rename" : "") +
+               ", sync " + options.sync.name().toLowerCase();
+    }
+}
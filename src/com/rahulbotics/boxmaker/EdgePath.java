@@ -0,0 +1,61 @@
+/*
+ * Class to hold the line segments that make up one notched edge
+ *
+ */
+package com.rahulbotics.boxmaker;
+
+/**
+ * The computed geometry for one notched edge of a face.  The segments are kept
+ * in a flat array of coordinates (fromX, fromY, toX, toY, ...) so that building
+ * an edge doesn't create an object per line.  Like the rest of the renderer the
+ * coordinates are in the box's units until they are drawn at the low level.
+ */
+class EdgePath {
+
+    // the description printed out before the edge is drawn
+    final String label;
+
+    // flattened segment endpoints, four doubles per line
+    private double[] coords;
+    // how many doubles of coords are in use
+    private int size;
+
+    /**
+     * Create an empty edge
+     * @param label			the description printed out before the edge is drawn
+     * @param expectedLines	a guess at how many lines will be added
+     */
+    EdgePath(String label, int expectedLines) {
+        this.label = label;
+        coords = new double[Math.max(expectedLines, 1) * 4];
+    }
+
+    /**
+     * Add one line segment to the end of the edge
+     */
+    void addLine(double fromX, double fromY, double toX, double toY) {
+        if (size + 4 > coords.length) {
+            double[] grown = new double[coords.length * 2];
+            System.arraycopy(coords, 0, grown, 0, size);
+            coords = grown;
+        }
+        coords[size++] = fromX;
+        coords[size++] = fromY;
+        coords[size++] = toX;
+        coords[size++] = toY;
+    }
+
+    /**
+     * @return	the number of line segments in this edge
+     */
+    int lineCount() {
+        return size / 4;
+    }
+
+    /**
+     * @return	the backing coordinate array, only the first lineCount()*4 entries are valid
+     */
+    double[] coords() {
+        return coords;
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Repeating cut patterns (living hinges, vents) to fill the inside of a face
+ *
+ */
+package com.rahulbotics.boxmaker;
+
+/**
+ * A cut pattern built from one repeating tile.  The tile is a handful of line
+ * segments; filling a face just steps the tile across the area inside the notched
+ * outline and streams every (clipped) segment into a {@link SegmentSink}, so even
+ * a panel with hundreds of thousands of cuts never holds more than one tile.
+ * <p>
+ * Every other row of tiles is shifted sideways by <code>rowShift</code>, which is
+ * what staggers the cuts of a living hinge.  Closed shapes (like vent slots) are
+ * only drawn when the whole shape fits, since a clipped slot would leave a flap
+ * instead of a hole.
+ */
+class FacePattern {
+
+    // the names of the patterns you can ask for from the command line
+    static final String HINGE = "hinge";
+    static final String VERTICAL_HINGE = "vhinge";
+    static final String VENT = "vent";
+
+    // the most tiles one fill will step over, so a silly spacing can't run forever
+    static final long MAX_TILES = 10000000L;
+
+    final String name;
+    // the size of one tile, and how far odd rows are slid over
+    final double tileWidth, tileHeight, rowShift;
+    // the segments in one tile, four doubles (fromX, fromY, toX, toY) per line
+    private final double[] tile;
+    // only draw tiles that fit completely inside the fill area
+    final boolean closed;
+    // run the tile with x and y swapped (cuts go up and down the face)
+    final boolean vertical;
+
+    // the extents of the segments in the tile, for checking if closed shapes fit
+    private double tileMinX, tileMinY, tileMaxX, tileMaxY;
+
+    private FacePattern(String name, double tileWidth, double tileHeight, double rowShift,
+                        double[] tile, boolean closed, boolean vertical) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Pattern tile must have a positive size");
+        }
+        this.name = name;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.rowShift = rowShift;
+        this.tile = tile;
+        this.closed = closed;
+        this.vertical = vertical;
+
+        tileMinX = tileMinY = Double.MAX_VALUE;
+        tileMaxX = tileMaxY = -Double.MAX_VALUE;
+        for (int i = 0; i < tile.length; i += 2) {
+            tileMinX = Math.min(tileMinX, tile[i]);
+            tileMaxX = Math.max(tileMaxX, tile[i]);
+            tileMinY = Math.min(tileMinY, tile[i+1]);
+            tileMaxY = Math.max(tileMaxY, tile[i+1]);
+        }
+    }
+
+    /**
+     * A straight-line lattice living hinge: rows of cuts with small gaps in them,
+     * every other row offset by half a cut so the gaps are staggered.
+     * @param cutLength	the length of each cut
+     * @param gap		the uncut material left between cuts in the same row
+     * @param spacing	the distance between rows of cuts
+     * @param vertical	run the cuts up and down the face instead of across it
+     */
+    static FacePattern livingHinge(double cutLength, double gap, double spacing, boolean vertical) {
+        if (!(cutLength > 0) || !(gap >= 0) || !(spacing > 0)) {
+            throw new IllegalArgumentException("Hinge cut length and spacing must be positive: "+
+                                               cutLength+", "+spacing);
+        }
+        double pitch = cutLength + gap;
+        return new FacePattern(vertical ? VERTICAL_HINGE : HINGE, pitch, spacing, pitch/2,
+                               new double[] { gap/2, 0, gap/2 + cutLength, 0 },
+                               false, vertical);
+    }
+
+    /**
+     * A grid of rectangular ventilation slots, with alternate rows staggered.
+     * @param slotLength	the long side of each slot
+     * @param slotWidth		the short side of each slot
+     * @param spacing		the material left between neighbouring slots
+     */
+    static FacePattern ventSlots(double slotLength, double slotWidth, double spacing) {
+        if (!(slotLength > 0) || !(slotWidth > 0) || !(spacing > 0)) {
+            throw new IllegalArgumentException("Vent slot size and spacing must be positive: "+
+                                               slotLength+" x "+slotWidth+", "+spacing);
+        }
+        double pitchX = slotLength + spacing;
+        double pitchY = slotWidth + spacing;
+        double x0 = spacing/2, y0 = spacing/2;
+        double x1 = x0 + slotLength, y1 = y0 + slotWidth;
+        return new FacePattern(VENT, pitchX, pitchY, pitchX/2,
+                               new double[] {
+                                   x0, y0, x1, y0,
+                                   x1, y0, x1, y1,
+                                   x1, y1, x0, y1,
+                                   x0, y1, x0, y0 },
+                               true, false);
+    }
+
+    /**
+     * Build one of the named patterns with sizes worked out from the material.
+     * The material left between cuts has to be wider than the kerf, or the laser
+     * just burns it all away.
+     * @param name		one of HINGE, VERTICAL_HINGE or VENT
+     * @param thickness	the material thickness
+     * @param kerf		the width of the laser's cut
+     * @param size		the cut (or slot) length, 0 to pick one from the thickness
+     * @param spacing	the distance between rows, 0 to pick one from the thickness
+     * @return			the pattern
+     */
+    static FacePattern named(String name, double thickness, double kerf,
+                             double size, double spacing) {
+        if (size < 0 || spacing < 0) {
+            throw new IllegalArgumentException("Pattern size and spacing must be positive");
+        }
+        if (HINGE.equals(name) || VERTICAL_HINGE.equals(name)) {
+            if (size == 0) size = thickness * 6;
+            if (spacing == 0) spacing = thickness / 2;
+            // the gap between cuts in a row is one thickness
+            checkWiderThanKerf("hinge gap", thickness, kerf);
+            checkWiderThanKerf("pattern spacing", spacing, kerf);
+            return livingHinge(size, thickness, spacing, VERTICAL_HINGE.equals(name));
+        } else if (VENT.equals(name)) {
+            if (size == 0) size = thickness * 4;
+            if (spacing == 0) spacing = thickness * 2;
+            checkWiderThanKerf("pattern spacing", spacing, kerf);
+            return ventSlots(size, thickness, spacing);
+        }
+        throw new IllegalArgumentException("Unknown pattern: "+name);
+    }
+
+    private static void checkWiderThanKerf(String what, double width, double kerf) {
+        if (!(width > kerf)) {
+            throw new IllegalArgumentException("The "+what+" ("+width+") must be wider than "+
+                                               "the cut width ("+kerf+")");
+        }
+    }
+
+    /**
+     * A description of everything that affects the cuts this pattern makes, so
+     * two patterns with the same spec always cut exactly the same lines.
+     * @return	the spec as text
+     */
+    String spec() {
+        StringBuilder sb = new StringBuilder(name);
+        sb.append(" tile=").append(tileWidth).append('x').append(tileHeight);
+        sb.append(" shift=").append(rowShift);
+        sb.append(" closed=").append(closed);
+        sb.append(" vertical=").append(vertical);
+        sb.append(" lines=");
+        for (int i = 0; i < tile.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(tile[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The area of a face that is safe to cut a pattern into: inside the notches,
+     * with an extra border of solid material all the way around.
+     * @param face		the face to fill
+     * @param box		the box the face belongs to
+     * @param border	how much solid material to leave inside the notches
+     * @return			minX, minY, maxX, maxY of the area
+     */
+    static double[] fillArea(BoxGeometry.Face face, Box box, double border) {
+        double inset = box.thickness + border;
+        return new double[] { face.xOrig + inset, face.yOrig + inset,
+                              face.xOrig + face.width - inset, face.yOrig + face.height - inset };
+    }
+
+    /**
+     * Make sure filling a rectangle won't take too many tiles, without drawing
+     * anything, so a pattern that is too fine can be turned down before the
+     * output file is even created.
+     * @throws IllegalArgumentException	if the pattern would take more than MAX_TILES tiles
+     */
+    void checkFill(double minX, double minY, double maxX, double maxY) {
+        if (maxX <= minX || maxY <= minY) return;
+        if (vertical) {
+            checkTiles(minY, minX, maxY, maxX);
+        } else {
+            checkTiles(minX, minY, maxX, maxY);
+        }
+    }
+
+    /**
+     * The tile count check, in pattern space.  It's done in doubles before anything
+     * gets cast to an int.
+     */
+    private void checkTiles(double minX, double minY, double maxX, double maxY) {
+        double cx = (minX + maxX) / 2 - tileWidth / 2;
+        double cy = (minY + maxY) / 2 - tileHeight / 2;
+        double rows = Math.ceil((maxY - cy - tileMinY) / tileHeight) -
+                      Math.floor((minY - cy - tileMaxY) / tileHeight) + 1;
+        double cols = Math.ceil((maxX - cx - tileMinX) / tileWidth) -
+                      Math.floor((minX - cx - tileMaxX - rowShift) / tileWidth) + 1;
+        if (rows * cols > MAX_TILES) {
+            throw new IllegalArgumentException("Pattern "+name+" is too fine to fill "+
+                                               (maxX-minX)+" x "+(maxY-minY)+
+                                               " (more than "+MAX_TILES+" tiles)");
+        }
+    }
+
+    /**
+     * Stream the pattern, clipped to a rectangle, into a sink.  The pattern is
+     * centered on the rectangle so it comes out symmetric on the face.
+     * @param minX	left side of the area to fill
+     * @param minY	bottom of the area to fill
+     * @param maxX	right side of the area to fill
+     * @param maxY	top of the area to fill
+     * @param sink	where to send the segments
+     * @return		the number of segments sent
+     * @throws IllegalArgumentException	if the pattern would take more than MAX_TILES tiles
+     */
+    long fill(double minX, double minY, double maxX, double maxY, SegmentSink sink) {
+        if (maxX <= minX || maxY <= minY) return 0;
+        if (vertical) {
+            // work in pattern space, where the cuts always run along x
+            double swap;
+            swap = minX; minX = minY; minY = swap;
+            swap = maxX; maxX = maxY; maxY = swap;
+        }
+        double cx = (minX + maxX) / 2 - tileWidth / 2;
+        double cy = (minY + maxY) / 2 - tileHeight / 2;
+        double[] seg = new double[4];
+        double[] t = new double[2];
+        long count = 0;
+        checkTiles(minX, minY, maxX, maxY);
+
+        int firstRow = (int) Math.floor((minY - cy - tileMaxY) / tileHeight);
+        int lastRow  = (int) Math.ceil((maxY - cy - tileMinY) / tileHeight);
+        for (int row = firstRow; row <= lastRow; row++) {
+            double ty = cy + row * tileHeight;
+            double tx0 = cx + ((row & 1) != 0 ? rowShift : 0);
+            int firstCol = (int) Math.floor((minX - tx0 - tileMaxX) / tileWidth);
+            int lastCol  = (int) Math.ceil((maxX - tx0 - tileMinX) / tileWidth);
+            for (int col = firstCol; col <= lastCol; col++) {
+                double tx = tx0 + col * tileWidth;
+                if (closed && (tx + tileMinX < minX || tx + tileMaxX > maxX ||
+                               ty + tileMinY < minY || ty + tileMaxY > maxY)) {
+                    continue;
+                }
+                for (int i = 0; i < tile.length; i += 4) {
+                    seg[0] = tx + tile[i];
+                    seg[1] = ty + tile[i+1];
+                    seg[2] = tx + tile[i+2];
+                    seg[3] = ty + tile[i+3];
+                    if (!clip(seg, t, minX, minY, maxX, maxY)) continue;
+                    if (vertical) {
+                        sink.line(seg[1], seg[0], seg[3], seg[2]);
+                    } else {
+                        sink.line(seg[0], seg[1], seg[2], seg[3]);
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Liang-Barsky clip of a segment against a rectangle, done in place
+     * @param seg	fromX, fromY, toX, toY; overwritten with the clipped segment
+     * @param t		scratch space for the two clip parameters
+     * @return		false if nothing of the segment is left
+     */
+    private static boolean clip(double[] seg, double[] t,
+                                double minX, double minY, double maxX, double maxY) {
+        double x0 = seg[0], y0 = seg[1];
+        double dx = seg[2] - x0, dy = seg[3] - y0;
+        t[0] = 0;
+        t[1] = 1;
+        if (!clipEdge(-dx, x0 - minX, t) || !clipEdge(dx, maxX - x0, t) ||
+            !clipEdge(-dy, y0 - minY, t) || !clipEdge(dy, maxY - y0, t) ||
+            t[1] <= t[0]) {
+            return false;
+        }
+        seg[0] = x0 + t[0] * dx;
+        seg[1] = y0 + t[0] * dy;
+        seg[2] = x0 + t[1] * dx;
+        seg[3] = y0 + t[1] * dy;
+        return true;
+    }
+
+    /**
+     * Narrow the clip parameters against one side of the rectangle
+     */
+    private static boolean clipEdge(double p, double q, double[] t) {
+        if (p == 0) return q >= 0;
+        double r = q / p;
+        if (p < 0) {
+            if (r > t[1]) return false;
+            if (r > t[0]) t[0] = r;
+        } else {
+            if (r < t[0]) return false;
+            if (r < t[1]) t[1] = r;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * Monte Carlo analysis of how well the finger joints will fit
+ *
+ */
+package com.rahulbotics.boxmaker;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Works out how likely each of the twelve joints of a box is to come out too
+ * tight, a press fit, a slip fit or loose, given how much the material thickness,
+ * the laser's cut width and the cut positions vary from job to job.
+ * <p>
+ * The renderer widens every tab by the design kerf and narrows every slot by it,
+ * so once the laser takes its real kerf off both sides of each line, the gap
+ * between a tab and its slot is <code>K1 + K2 - 2k</code> (the real kerfs on the
+ * two faces, less twice the design kerf).  On top of that every finger boundary
+ * (the two ends of the joint included) lands a little off from where it was
+ * drawn, on each of the two faces.  A finger's clearance changes by how much the
+ * offsets at its two boundaries differ, so neighbouring fingers share a boundary
+ * and aren't independent.  Each trial keeps the tightest and the loosest finger
+ * of every joint: the joint is too tight if any finger is past the press limit,
+ * and loose if any finger has more than the slip limit of play.
+ * <p>
+ * Two things are left out on purpose.  The notch counts and lengths come from the
+ * nominal box, since they are fixed once the file is drawn, whatever the sheet
+ * really measures; they are not worked out again for each trial.  And the
+ * thickness only changes how far the fingers sit out from or into the face next
+ * to them (the "not flush" figure), not the side to side fit this scores.
+ * <p>
+ * The gaps for a trial are kept without the design kerf taken off, which means
+ * every candidate design kerf can be scored against the same trials.  That is how
+ * the recommended kerf is found, for the notch length asked for: it is the one
+ * that leaves the most joints neither too tight nor loose.  The other notch
+ * lengths are then scored at that same kerf.  They are reported, not ranked:
+ * nothing here counts in favour of more fingers (like strength), so any ranking
+ * would just pick the fewest.  Trials are split across cores on a fork/join pool,
+ * each chunk with its own seeded random numbers, so the same inputs give the same
+ * answer.
+ */
+class FitAnalysis {
+
+    /**
+     * What varies and by how much (all in the same units as the box).  Each is
+     * treated as normally distributed around the nominal value.
+     */
+    static class Tolerances {
+        // standard deviation of the sheet thickness
+        double thicknessSigma = 0;
+        // the average kerf the laser really cuts, NaN to use the box's design kerf
+        double kerfMean = Double.NaN;
+        // standard deviation of the real kerf from face to face
+        double kerfSigma = 0;
+        // standard deviation of where each cut lands
+        double dimensionSigma = 0;
+
+        // most interference that can still be pressed together, NaN for DEFAULT_LIMIT
+        double pressLimit = Double.NaN;
+        // most clearance that still holds together without glue, NaN for DEFAULT_LIMIT
+        double slipLimit = Double.NaN;
+
+        // how many random boxes to try per candidate notch length
+        int trials = 20000;
+        // seed for the random numbers, so runs can be repeated
+        long seed = 1;
+    }
+
+    // faces, in BoxGeometry order
+    private static final int BACK = 0, LEFT = 1, BOTTOM = 2, RIGHT = 3, FRONT = 4, TOP = 5;
+    // the axis each joint runs along
+    private static final int W = 0, H = 1, D = 2;
+
+    // the twelve joints: the two faces that meet and the axis they meet along
+    static final int EDGE_COUNT = 12;
+    private static final int[][] EDGES = {
+        { BACK, BOTTOM, W }, { BACK, TOP, W }, { FRONT, BOTTOM, W }, { FRONT, TOP, W },
+        { BACK, LEFT, H }, { BACK, RIGHT, H }, { FRONT, LEFT, H }, { FRONT, RIGHT, H },
+        { BOTTOM, LEFT, D }, { BOTTOM, RIGHT, D }, { TOP, LEFT, D }, { TOP, RIGHT, D }
+    };
+
+    // the press and slip limits used when none are given (in inches, like the box)
+    static final double DEFAULT_LIMIT = 0.004;
+    // the most trials allowed, which keeps the gap arrays to a few tens of megabytes
+    static final int MAX_TRIALS = 200000;
+    // how many trials each fork/join task does without splitting further
+    private static final int TRIALS_PER_TASK = 1024;
+    // notch lengths to try, as multiples of the thickness ("two or three times")
+    private static final double[] NOTCH_MULTIPLES = { 2.0, 2.5, 3.0 };
+
+    /**
+     * The fit of one joint at a given design kerf
+     */
+    static class EdgeFit {
+        final String name;
+        final int fingers;
+        final double tooTight, pressFit, slipFit, loose;
+        // of the tightest finger
+        final double meanClearance, sigmaClearance;
+
+        EdgeFit(String name, int fingers, double tooTight, double pressFit, double slipFit,
+                double loose, double meanClearance, double sigmaClearance) {
+            this.name = name;
+            this.fingers = fingers;
+            this.tooTight = tooTight;
+            this.pressFit = pressFit;
+            this.slipFit = slipFit;
+            this.loose = loose;
+            this.meanClearance = meanClearance;
+            this.sigmaClearance = sigmaClearance;
+        }
+    }
+
+    /**
+     * The outcome for one notch length, at the recommended design kerf
+     */
+    static class Result {
+        final double notchLength;
+        final double kerf;
+        final Box box;
+        final EdgeFit[] edges;
+        // chance that a finger sits more than the slip limit proud of or below the face
+        final double notFlush;
+        // over all the joints
+        final double pressFit, tooTight, loose;
+
+        Result(double notchLength, double kerf, Box box, EdgeFit[] edges, double notFlush) {
+            this.notchLength = notchLength;
+            this.kerf = kerf;
+            this.box = box;
+            this.edges = edges;
+            this.notFlush = notFlush;
+            double p = 0, t = 0, l = 0;
+            for (EdgeFit e : edges) {
+                p += e.pressFit;
+                t += e.tooTight;
+                l += e.loose;
+            }
+            pressFit = p / edges.length;
+            tooTight = t / edges.length;
+            loose = l / edges.length;
+        }
+    }
+
+    /**
+     * The raw gaps from one run of trials, before any design kerf is taken off
+     */
+    private static class Trials {
+        // the tightest and loosest finger of each joint, per trial
+        final double[][] tightest, loosest;
+        final double[] flushOffsets;
+
+        Trials(int trials) {
+            tightest = new double[EDGE_COUNT][trials];
+            loosest = new double[EDGE_COUNT][trials];
+            flushOffsets = new double[trials];
+        }
+    }
+
+    /**
+     * Analyze a box design at the notch length asked for and a few others
+     * @param width			outer width of the box
+     * @param height		outer height of the box
+     * @param depth			outer depth of the box
+     * @param thickness		nominal material thickness
+     * @param kerf			the design kerf the box would be drawn with
+     * @param notchLength	the notch length asked for
+     * @param tol			how much everything varies
+     * @return				one result per notch length tried, the one asked for first,
+     * 						all at the kerf recommended for the one asked for
+     * @throws IllegalArgumentException	if a tolerance doesn't make sense
+     */
+    static Result[] analyze(double width, double height, double depth,
+                            double thickness, double kerf, double notchLength,
+                            Tolerances tol) {
+        double kerfMean = Double.isNaN(tol.kerfMean) ? kerf : tol.kerfMean;
+        double pressLimit = Double.isNaN(tol.pressLimit) ? DEFAULT_LIMIT : tol.pressLimit;
+        double slipLimit = Double.isNaN(tol.slipLimit) ? DEFAULT_LIMIT : tol.slipLimit;
+        if (!(pressLimit > 0)) {
+            throw new IllegalArgumentException("Press limit must be positive");
+        }
+        if (!(slipLimit >= 0)) {
+            throw new IllegalArgumentException("Slip limit can't be negative");
+        }
+        if (!(kerfMean >= 0)) {
+            throw new IllegalArgumentException("Kerf mean can't be negative");
+        }
+        if (!(tol.thicknessSigma >= 0) || !(tol.kerfSigma >= 0) || !(tol.dimensionSigma >= 0)) {
+            throw new IllegalArgumentException("Standard deviations can't be negative");
+        }
+        if (tol.trials < 1 || tol.trials > MAX_TRIALS) {
+            throw new IllegalArgumentException("Trials must be between 1 and "+MAX_TRIALS);
+        }
+
+        double[] candidates = new double[NOTCH_MULTIPLES.length + 1];
+        int count = 0;
+        candidates[count++] = notchLength;
+        for (double multiple : NOTCH_MULTIPLES) {
+            double candidate = thickness * multiple;
+            if (Math.abs(candidate - notchLength) > 1e-9) candidates[count++] = candidate;
+        }
+        candidates = Arrays.copyOf(candidates, count);
+
+        // the kerf comes from the notch length asked for, then every notch length
+        // is scored at it (one at a time, so only one set of trials is held)
+        Result[] results = new Result[candidates.length];
+        double designKerf = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            // the notch counts (and so the fingers per joint) come from the same
+            // calculation the renderer uses; the kerf only changes the outline
+            Box box = new Box(width, height, depth, thickness, kerf, candidates[i]);
+            Trials trials = runTrials(box, kerfMean, tol);
+            if (i == 0) designKerf = bestKerf(trials, pressLimit, slipLimit);
+            results[i] = score(box, candidates[i], trials, designKerf, pressLimit, slipLimit);
+        }
+        return results;
+    }
+
+    /**
+     * Run the trials for one box
+     */
+    private static Trials runTrials(Box box, double kerfMean, Tolerances tol) {
+        int[] fingers = { box.numNotchesW, box.numNotchesH, box.numNotchesD };
+        Trials trials = new Trials(tol.trials);
+        ForkJoinPool.commonPool().invoke(
+            new TrialTask(trials, fingers, kerfMean, tol, 0, tol.trials));
+        return trials;
+    }
+
+    /**
+     * Sort each joint's trials into too tight, press, slip and loose at a design kerf
+     */
+    private static Result score(Box box, double notchLength, Trials trials, double designKerf,
+                                double pressLimit, double slipLimit) {
+        int[] fingers = { box.numNotchesW, box.numNotchesH, box.numNotchesD };
+        int n = trials.flushOffsets.length;
+        EdgeFit[] edges = new EdgeFit[EDGE_COUNT];
+        for (int e = 0; e < EDGE_COUNT; e++) {
+            int tight = 0, press = 0, slip = 0, loose = 0;
+            double sum = 0, sumSq = 0;
+            for (int t = 0; t < n; t++) {
+                double c = trials.tightest[e][t] - 2*designKerf;
+                sum += c;
+                sumSq += c*c;
+                if (c < -pressLimit) tight++;
+                else if (trials.loosest[e][t] - 2*designKerf > slipLimit) loose++;
+                else if (c <= 0) press++;
+                else slip++;
+            }
+            double mean = sum / n;
+            double sigma = Math.sqrt(Math.max(sumSq / n - mean*mean, 0));
+            edges[e] = new EdgeFit(edgeName(e), fingers[EDGES[e][2]],
+                                   (double) tight / n, (double) press / n,
+                                   (double) slip / n, (double) loose / n,
+                                   mean, sigma);
+        }
+
+        int notFlush = 0;
+        for (int t = 0; t < n; t++) {
+            if (Math.abs(trials.flushOffsets[t]) > slipLimit) notFlush++;
+        }
+        return new Result(notchLength, designKerf, box, edges, (double) notFlush / n);
+    }
+
+    /**
+     * Find the design kerf k that leaves the most joints neither too tight nor
+     * loose.  A joint with tightest gap g and loosest gap G is fine when
+     * <code>G - slipLimit &lt;= 2k &lt;= g + pressLimit</code>, so every joint in
+     * every trial gives a range for 2k; sweeping over the sorted ends of the ranges
+     * finds where the most overlap, and the kerf is taken from the middle of that.
+     */
+    private static double bestKerf(Trials trials, double pressLimit, double slipLimit) {
+        int n = trials.flushOffsets.length;
+        double[] starts = new double[EDGE_COUNT * n];
+        double[] ends = new double[EDGE_COUNT * n];
+        int count = 0;
+        for (int e = 0; e < EDGE_COUNT; e++) {
+            for (int t = 0; t < n; t++) {
+                double start = trials.loosest[e][t] - slipLimit;
+                double end = trials.tightest[e][t] + pressLimit;
+                // the kerf can't be negative, and some joints can't be made to fit
+                if (end < 0 || start > end) continue;
+                starts[count] = Math.max(start, 0);
+                ends[count] = end;
+                count++;
+            }
+        }
+        if (count == 0) return 0;
+        Arrays.sort(starts, 0, count);
+        Arrays.sort(ends, 0, count);
+        int covered = 0, best = 0;
+        double bestMiddle = 0;
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            while (ends[j] < starts[i]) {
+                covered--;
+                j++;
+            }
+            covered++;
+            if (covered > best) {
+                best = covered;
+                bestMiddle = (starts[i] + ends[j]) / 2;
+            }
+        }
+        return bestMiddle / 2;
+    }
+
+    /**
+     * Normally distributed random numbers by the ziggurat method (Marsaglia and
+     * Tsang, in Doornik's form that keeps the layer and the position on it in
+     * separate bits).  Nearly every number costs one nextLong and a compare, which
+     * matters since the finger boundaries use up most of the trial time.
+     * SplittableRandom only has its own nextGaussian from Java 17 on.
+     */
+    private static class Gaussian {
+        // the number of layers, where the tail starts, and the area of each layer
+        private static final int LAYERS = 128;
+        private static final double R = 3.442619855899;
+        private static final double V = 9.91256303526217e-3;
+        // the right edge of each layer, and how much of each layer is inside the next
+        private static final double[] X = new double[LAYERS + 1];
+        private static final double[] RATIO = new double[LAYERS];
+        static {
+            double f = Math.exp(-0.5 * R * R);
+            X[0] = V / f;
+            X[1] = R;
+            X[LAYERS] = 0;
+            for (int i = 2; i < LAYERS; i++) {
+                X[i] = Math.sqrt(-2 * Math.log(V / X[i-1] + f));
+                f = Math.exp(-0.5 * X[i] * X[i]);
+            }
+            for (int i = 0; i < LAYERS; i++) {
+                RATIO[i] = X[i+1] / X[i];
+            }
+        }
+
+        private final SplittableRandom random;
+
+        Gaussian(long seed) {
+            random = new SplittableRandom(seed);
+        }
+
+        double next() {
+            while (true) {
+                long bits = random.nextLong();
+                int i = (int) (bits & (LAYERS - 1));
+                double u = 2 * ((bits >>> 11) * 0x1.0p-53) - 1;
+                if (Math.abs(u) < RATIO[i]) return u * X[i];
+                if (i == 0) return tail(u < 0);
+                double x = u * X[i];
+                double f0 = Math.exp(-0.5 * (X[i] * X[i] - x * x));
+                double f1 = Math.exp(-0.5 * (X[i+1] * X[i+1] - x * x));
+                if (f1 + random.nextDouble() * (f0 - f1) < 1.0) return x;
+            }
+        }
+
+        // past R, which happens about once in every 3600 numbers
+        private double tail(boolean negative) {
+            double x, y;
+            do {
+                x = Math.log(1 - random.nextDouble()) / R;
+                y = Math.log(1 - random.nextDouble());
+            } while (-2 * y < x * x);
+            return negative ? x - R : R - x;
+        }
+    }
+
+    /**
+     * Runs a range of trials, splitting it up until the pieces are small enough
+     */
+    private static class TrialTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Trials trials;
+        private final int[] fingers;
+        private final double kerfMean;
+        private final Tolerances tol;
+        private final int from, to;
+
+        TrialTask(Trials trials, int[] fingers, double kerfMean,
+                  Tolerances tol, int from, int to) {
+            this.trials = trials;
+            this.fingers = fingers;
+            this.kerfMean = kerfMean;
+            this.tol = tol;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TRIALS_PER_TASK) {
+                int mid = from + (to - from) / 2;
+                invokeAll(new TrialTask(trials, fingers, kerfMean, tol, from, mid),
+                          new TrialTask(trials, fingers, kerfMean, tol, mid, to));
+                return;
+            }
+            // seed from where the chunk starts, so the answer doesn't depend on
+            // how many threads there were
+            Gaussian random = new Gaussian(tol.seed * 0x9E3779B97F4A7C15L + from);
+            double[] kerfs = new double[BoxGeometry.FACE_COUNT];
+            // each boundary is cut once on each face, and it's the difference between
+            // where those two cuts land that matters (the difference of two normals
+            // is a normal sqrt(2) times as wide)
+            double shiftSigma = tol.dimensionSigma * Math.sqrt(2);
+            for (int t = from; t < to; t++) {
+                // the fingers are as long as the nominal thickness, so any difference
+                // in the real sheet leaves them sticking out or sunk in
+                trials.flushOffsets[t] = tol.thicknessSigma * random.next();
+                for (int f = 0; f < kerfs.length; f++) {
+                    kerfs[f] = kerfMean + tol.kerfSigma * random.next();
+                }
+                for (int e = 0; e < EDGE_COUNT; e++) {
+                    int[] edge = EDGES[e];
+                    int n = fingers[edge[2]];
+                    double tightest = 0, loosest = 0;
+                    if (shiftSigma > 0) {
+                        // a shift is the first face's cut less the second's, so when
+                        // the first face has the tab, spreading shifts make it tighter
+                        // (the tab swaps faces every finger, which is what sign does)
+                        tightest = Double.MAX_VALUE;
+                        loosest = -Double.MAX_VALUE;
+                        double shift = random.next();
+                        double sign = -shiftSigma;
+                        for (int i = 0; i < n; i++) {
+                            double next = random.next();
+                            double c = sign * (next - shift);
+                            if (c < tightest) tightest = c;
+                            if (c > loosest) loosest = c;
+                            shift = next;
+                            sign = -sign;
+                        }
+                    }
+                    double kerfs2 = kerfs[edge[0]] + kerfs[edge[1]];
+                    trials.tightest[e][t] = kerfs2 + tightest;
+                    trials.loosest[e][t] = kerfs2 + loosest;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return	the name of a joint, like "back/bottom"
+     */
+    static String edgeName(int edge) {
+        return BoxGeometry.FACE_NAMES[EDGES[edge][0]] + "/" + BoxGeometry.FACE_NAMES[EDGES[edge][1]];
+    }
+
+    /**
+     * Write up the results for people to read
+     * @param results	what analyze returned
+     * @param unitScale	multiply lengths by this for display
+     * @param unitName	what to call the display units
+     * @return			the report
+     */
+    static String report(Result[] results, double unitScale, String unitName) {
+        StringBuilder sb = new StringBuilder();
+        Result asked = results[0];
+        sb.append(String.format("Recommended kerf (%s): %.4f%n", unitName, asked.kerf * unitScale));
+        sb.append(String.format("Notch length (%s): %.4f (W %.4f x %d, H %.4f x %d, D %.4f x %d)%n",
+                                unitName, asked.notchLength * unitScale,
+                                asked.box.notchLengthW * unitScale, asked.box.numNotchesW,
+                                asked.box.notchLengthH * unitScale, asked.box.numNotchesH,
+                                asked.box.notchLengthD * unitScale, asked.box.numNotchesD));
+        sb.append(String.format("Chance a finger is not flush: %.1f%%%n", asked.notFlush * 100));
+        sb.append(String.format("%-14s %7s %8s %8s %8s %8s %10s %10s%n", "Joint", "fingers",
+                                "tight", "press", "slip", "loose", "clearance", "sigma"));
+        for (EdgeFit e : asked.edges) {
+            sb.append(String.format("%-14s %7d %7.1f%% %7.1f%% %7.1f%% %7.1f%% %10.4f %10.4f%n",
+                                    e.name, e.fingers, e.tooTight * 100, e.pressFit * 100,
+                                    e.slipFit * 100, e.loose * 100,
+                                    e.meanClearance * unitScale, e.sigmaClearance * unitScale));
+        }
+        sb.append("Other notch lengths, at the same kerf:").append(String.format("%n"));
+        for (int i = 1; i < results.length; i++) {
+            Result r = results[i];
+            sb.append(String.format("  %.4f (W %d, H %d, D %d fingers): press %.1f%%, tight %.1f%%, loose %.1f%%%n",
+                                    r.notchLength * unitScale,
+                                    r.box.numNotchesW, r.box.numNotchesH, r.box.numNotchesD,
+                                    r.pressFit * 100, r.tooTight * 100, r.loose * 100));
+        }
+        return sb.toString();
+    }
+}
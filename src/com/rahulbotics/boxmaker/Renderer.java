@@ -9,15 +9,27 @@
 
 package com.rahulbotics.boxmaker;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
 
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
+import com.lowagie.text.ExceptionConverter;
 import com.lowagie.text.Paragraph;
 import com.lowagie.text.Rectangle;
 import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfDate;
+import com.lowagie.text.pdf.PdfName;
 import com.lowagie.text.pdf.PdfWriter;
 
 import com.rahulbotics.boxmaker.Box;
@@ -59,6 +71,37 @@ public class Renderer {
     private PdfWriter docPdfWriter;
     // the path that we are writing the file to
     private String filePath; 
+    // what to draw and how to write it
+    private Options options;
+    // the content hash to stamp into the file, or null to write a normal (dated) file
+    private String reproducibleHash;
+    // where the document goes when it has to be fixed up before hitting the disk
+    private ByteArrayOutputStream docBuffer;
+    // the file being written, so it can be thrown away if rendering fails
+    private DocumentOutput docOutput;
+
+    // how many pattern segments to put in one path before stroking it
+    static final int PATTERN_SEGMENTS_PER_STROKE = 4096;
+    // the date written into reproducible files (the start of 1970, UTC)
+    static final long REPRODUCIBLE_DATE_MILLIS = 0L;
+
+    /**
+     * Everything about how to render a box, other than the box itself.  The
+     * defaults give the same file the public render method writes.
+     */
+    static class Options {
+        // draw an outer edge with a dimension (for easier DXF import)
+        boolean drawBoundingBox = false;
+        // the user specified the box in inches?
+        boolean specifiedInInches = true;
+        // the pattern to fill each face with, keyed by face name
+        Map<String,FacePattern> patterns = Collections.emptyMap();
+        // write the same bytes every time for the same box: a fixed date, and
+        // the document ID set from the content hash
+        boolean reproducible = false;
+        // buffering, renaming and syncing settings for the file
+        DocumentOutput.Options output = new DocumentOutput.Options();
+    }
 
     /**
      * Public method to render and save a box.
@@ -76,9 +119,39 @@ public class Renderer {
                               boolean specifiedInInches) 
         throws FileNotFoundException, DocumentException {
 
+        Options options = new Options();
+        options.drawBoundingBox = drawBoundingBox;
+        options.specifiedInInches = specifiedInInches;
+        render(filePath, box, options);
+    }
+
+    /**
+     * Render and save a box.  If anything goes wrong the partly written file is
+     * thrown away (when writing through a temporary file, nothing is left behind).
+     *  
+     * @param filePath			the full absolute path to save the file to
+     * @param box               the box with all needed dimensions
+     * @param options			what to draw and how to write the file
+     *
+     * @throws FileNotFoundException
+     * @throws DocumentException
+     */
+    static void render(String filePath, Box box, Options options) 
+        throws FileNotFoundException, DocumentException {
+
         Renderer myRenderer = new Renderer(filePath);
-    	myRenderer.drawAllSides(box, drawBoundingBox, specifiedInInches);
-    	myRenderer.closeDoc();
+        myRenderer.options = options;
+        if (options.reproducible) {
+            myRenderer.reproducibleHash = contentHash(box, options);
+        }
+        boolean done = false;
+        try {
+        	myRenderer.drawAllSides(box, options.drawBoundingBox, options.specifiedInInches);
+        	myRenderer.closeDoc();
+        	done = true;
+        } finally {
+        	if (!done && myRenderer.docOutput != null) myRenderer.docOutput.abort();
+        }
     }
     
 	/**
@@ -101,13 +174,24 @@ public class Renderer {
 		double docHeight = heightMm*DPI;
 		//System.out.println("doc = "+docWidth+" x "+docHeight);
     	doc = new Document(new Rectangle((float)docWidth, (float)docHeight));
-		docPdfWriter = PdfWriter.getInstance(doc,new FileOutputStream(filePath));
+		OutputStream out;
+		if (reproducibleHash != null) {
+			// the ID has to be patched in after iText is done, so hold the file in memory
+			docBuffer = new ByteArrayOutputStream();
+			out = docBuffer;
+		} else {
+			docOutput = new DocumentOutput(filePath, options.output);
+			out = docOutput;
+		}
+		docPdfWriter = PdfWriter.getInstance(doc,out);
 		String appNameVersion = BoxMakerConstants.APP_NAME+" "+BoxMakerConstants.VERSION;
 		doc.addAuthor(appNameVersion);
 		doc.open();
+		String producedOn = (reproducibleHash != null) ?
+		    "  content hash "+reproducibleHash : "  on "+new Date();
 		doc.add(new Paragraph(
                     "Produced by "+BoxMakerConstants.APP_NAME+" "+BoxMakerConstants.VERSION+"\n"+
-                    "  on "+new Date()+"\n"+BoxMakerConstants.WEBSITE_URL )
+                    producedOn+"\n"+BoxMakerConstants.WEBSITE_URL )
                 );
     }
 
@@ -131,9 +215,129 @@ public class Renderer {
 
     /**
      * Close up the document (writing it to disk)
+     * @throws DocumentException
      */
-    private void closeDoc(){
-		doc.close();    	
+    private void closeDoc() throws DocumentException {
+		if (reproducibleHash != null) {
+			// pin the dates iText would otherwise set to now
+			Calendar fixedDate = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+			fixedDate.setTimeInMillis(REPRODUCIBLE_DATE_MILLIS);
+			docPdfWriter.getInfo().put(PdfName.CREATIONDATE, new PdfDate(fixedDate));
+			docPdfWriter.getInfo().put(PdfName.MODDATE, new PdfDate(fixedDate));
+		}
+		try {
+			doc.close();
+		} catch (ExceptionConverter e) {
+			// iText hands back IOExceptions from the stream (say a failed fsync or rename) wrapped up
+			throw new DocumentException(e.getException());
+		}
+		if (reproducibleHash == null) return;
+
+		byte[] bytes = docBuffer.toByteArray();
+		setDocumentId(bytes, reproducibleHash);
+		try {
+			DocumentOutput.writeFile(filePath, options.output, bytes);
+		} catch (IOException e) {
+			throw new DocumentException(e);
+		}
+    }
+
+    /**
+     * iText always makes up a random document ID when it closes the file, so swap
+     * it for one from the content hash.  The new ID is the same length as the old
+     * one, so none of the offsets in the file change.
+     * @param pdf	the finished file
+     * @param hash	the content hash, as 64 hex digits
+     * @throws DocumentException	if the ID isn't laid out the way iText 2.1.4 writes it,
+     * 								since the file wouldn't be reproducible
+     */
+    private static void setDocumentId(byte[] pdf, String hash) throws DocumentException {
+		byte[] marker = "/ID [<".getBytes();
+		// the ID is in the trailer, right at the end, so look for it backwards
+		for (int i = pdf.length - marker.length; i >= 0; i--) {
+			int j = 0;
+			while (j < marker.length && pdf[i+j] == marker[j]) j++;
+			if (j < marker.length) continue;
+			int first = i + marker.length;
+			int second = first + 32 + 2;	// skip over "><"
+			if (second + 32 + 2 > pdf.length || !isHex(pdf, first, 32) ||
+			    pdf[first+32] != '>' || pdf[first+33] != '<' ||
+			    !isHex(pdf, second, 32) || pdf[second+32] != '>' || pdf[second+33] != ']') {
+				throw new DocumentException("Can't make the file reproducible: "+
+				                            "the document ID isn't laid out as expected");
+			}
+			for (int k = 0; k < 32; k++) {
+				pdf[first+k] = (byte) hash.charAt(k);
+				pdf[second+k] = (byte) hash.charAt(32+k);
+			}
+			return;
+		}
+		throw new DocumentException("Can't make the file reproducible: no document ID found");
+    }
+
+    /**
+     * @return	true if the count bytes starting at off are all hex digits
+     */
+    private static boolean isHex(byte[] b, int off, int count) {
+		for (int i = off; i < off + count; i++) {
+			if (Character.digit((char) b[i], 16) < 0) return false;
+		}
+		return true;
+    }
+
+    /**
+     * Work out the hash of the file that rendering this box will produce, without
+     * rendering it.  Anything that changes the output (the box, the options, the
+     * patterns, and the versions of this program, iText and Java) goes into the
+     * hash, so a file with this hash can be used in place of rendering it again.
+     * Java is in there because the numbers in the file are written with
+     * Double.toString, which changed what it prints in Java 19.
+     *
+     * @param box               the box
+     * @param options			what to draw (how the file gets written doesn't matter)
+     * @return					the SHA-256 of the spec, as 64 lower case hex digits
+     */
+    static String contentHash(Box box, Options options) {
+		StringBuilder spec = new StringBuilder();
+		spec.append(BoxMakerConstants.APP_NAME).append(' ').append(BoxMakerConstants.VERSION).append('\n');
+		spec.append(Document.getVersion()).append('\n');
+		spec.append("java=").append(System.getProperty("java.specification.version")).append('\n');
+		spec.append("width=").append(box.width).append('\n');
+		spec.append("height=").append(box.height).append('\n');
+		spec.append("depth=").append(box.depth).append('\n');
+		spec.append("thickness=").append(box.thickness).append('\n');
+		spec.append("kerf=").append(box.kerf).append('\n');
+		spec.append("notchLength=").append(box.notchLength).append('\n');
+		spec.append("boundingBox=").append(options.drawBoundingBox).append('\n');
+		spec.append("inches=").append(options.specifiedInInches).append('\n');
+		// walk the faces in drawing order so the map's order doesn't matter
+		for (String face : BoxGeometry.FACE_NAMES) {
+			FacePattern pattern = options.patterns.get(face);
+			if (pattern != null) {
+				spec.append("pattern.").append(face).append('=').append(pattern.spec()).append('\n');
+			}
+		}
+		return sha256Hex(spec.toString());
+    }
+
+    /**
+     * @return	the SHA-256 of some text (as UTF-8), as 64 lower case hex digits
+     */
+    static String sha256Hex(String text) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] digest = md.digest(text.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder(digest.length*2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
     }
     
 	/**
@@ -160,12 +364,23 @@ public class Renderer {
                              boolean specifiedInInches) 
         throws FileNotFoundException, DocumentException{
 
-        double margin = 0.5;
+        double margin = BoxGeometry.MARGIN;
+
+		//work out all the faces (in parallel), and make sure the patterns fit them
+		//before the file gets created
+		BoxGeometry.Face[] faces = BoxGeometry.computeFaces(box, margin);
+		for (BoxGeometry.Face face : faces) {
+			FacePattern pattern = options.patterns.get(face.name);
+			if (pattern != null) {
+				double[] area = FacePattern.fillArea(face, box, box.thickness);
+				pattern.checkFill(area[0], area[1], area[2], area[3]);
+			}
+		}
 			
 		//initialize the eps file
 		double boxPiecesWidth = (box.depth * 2 + box.width);		// based on layout of pieces
 		double boxPiecesHeight = (box.height * 2 + box.depth * 2); // based on layout of pieces
-		openDoc((double) (boxPiecesWidth+margin*4),(double) (boxPiecesHeight+margin*5));
+		openDoc(BoxGeometry.layoutWidth(box, margin), BoxGeometry.layoutHeight(box, margin));
         if(specifiedInInches) {
             doc.add(new Paragraph("Width (in): "+box.width));
             doc.add(new Paragraph("Height (in): "+box.height));
@@ -183,221 +398,54 @@ public class Renderer {
         }
 		if(drawBoundingBox) drawBoundingBox(margin,boxPiecesWidth+margin*2,boxPiecesHeight+margin*3,specifiedInInches);
 
-		//start the drawing phase
-		double xOrig = 0;
-		double yOrig = 0;
-	
-		// compensate for the cut width (in part) by increasing mwidth (eolson)
-		// no, don't do that, because the cut widths cancel out. (eolson)
-		//	    mwidth+=box.kerf/2; 
-
-		//1. a W x H side (the back)
-		xOrig = box.depth + margin*2;
-		yOrig = margin;
-		drawHorizontalLine(box, xOrig,yOrig,box.notchLengthW,box.numNotchesW,box.kerf/2,false,false, false);					//top
-		drawHorizontalLine(box, xOrig,yOrig+box.height-box.thickness,box.notchLengthW,box.numNotchesW, box.kerf/2,true,false, false);	//bottom
-		drawVerticalLine(box, xOrig,yOrig,box.notchLengthH,box.numNotchesH, box.kerf/2,false,false);					//left
-		drawVerticalLine(box, xOrig+box.width-box.thickness,yOrig,box.notchLengthH,box.numNotchesH, -box.kerf/2,false,false);	//right
-		
-		//2. a D x H side (the left side)
-		xOrig = margin;
-		yOrig = box.height + margin*2;
-		drawHorizontalLine(box, xOrig,yOrig,box.notchLengthD,box.numNotchesD, box.kerf/2,false,false, false);					//top
-		drawHorizontalLine(box, xOrig,yOrig+box.height-box.thickness,box.notchLengthD,box.numNotchesD, box.kerf/2,true,false, false);	//bottom
-		drawVerticalLine(box, xOrig,yOrig,box.notchLengthH,box.numNotchesH, box.kerf/2,false,false);					//left
-		drawVerticalLine(box, xOrig+box.depth-box.thickness,yOrig,box.notchLengthH,box.numNotchesH, -box.kerf/2,false,false);	//right
-		
-		//3. a W x D side (the bottom)
-		xOrig = box.depth + margin*2;
-		yOrig = box.height + margin*2;
-		drawHorizontalLine(box, xOrig,yOrig,box.notchLengthW,box.numNotchesW, -box.kerf/2,true,true, false);				//top
-		drawHorizontalLine(box, xOrig,yOrig+box.depth-box.thickness,box.notchLengthW,box.numNotchesW, -box.kerf/2,false,true, false);	//bottom
-		drawVerticalLine(box, xOrig,yOrig,box.notchLengthD,box.numNotchesD, -box.kerf/2,true,true);				//left
-		drawVerticalLine(box, xOrig+box.width-box.thickness,yOrig,box.notchLengthD,box.numNotchesD, -box.kerf/2,false,true);	//right
-
-		//4. a D x H side (the right side)
-		xOrig = box.depth + box.width + margin*3;
-		yOrig = box.height + margin*2;
-		drawHorizontalLine(box, xOrig,yOrig,box.notchLengthD,box.numNotchesD, box.kerf/2,false,false, false);					//top
-		drawHorizontalLine(box, xOrig,yOrig+box.height-box.thickness,box.notchLengthD,box.numNotchesD, box.kerf/2,true,false, false);	//bottom
-		drawVerticalLine(box, xOrig,yOrig,box.notchLengthH,box.numNotchesH, box.kerf/2,false,false);					//left
-		drawVerticalLine(box, xOrig+box.depth-box.thickness,yOrig,box.notchLengthH,box.numNotchesH, -box.kerf/2,false,false);	//right
-
-		//5. a W x H side (the front)
-		xOrig = box.depth + margin*2;
-		yOrig = box.height + box.depth+ margin*3;
-		drawHorizontalLine(box, xOrig,yOrig,box.notchLengthW,box.numNotchesW, box.kerf/2,false,false, false);					//top
-		drawHorizontalLine(box, xOrig,yOrig+box.height-box.thickness,box.notchLengthW,box.numNotchesW, box.kerf/2,true,false, false);	//bottom
-		drawVerticalLine(box, xOrig,yOrig,box.notchLengthH,box.numNotchesH, box.kerf/2,false,false);					//left
-		drawVerticalLine(box, xOrig+box.width-box.thickness,yOrig,box.notchLengthH,box.numNotchesH, -box.kerf/2,false,false);	//right
-		
-		//6. a W x D side (the top)
-		xOrig = box.depth + margin*2;
-		yOrig = box.height*2 + box.depth + margin*4;
-		drawHorizontalLine(box, xOrig,                     yOrig,                     box.notchLengthW, box.numNotchesW, -box.kerf/2, true,  true, true); //top
-		drawHorizontalLine(box, xOrig,                     yOrig + box.depth - box.thickness, box.notchLengthW, box.numNotchesW, -box.kerf/2, false, true, true);	//bottom
-		drawVerticalLine  (box, xOrig,                     yOrig,                     box.notchLengthD, box.numNotchesD, -box.kerf/2, true,  true); //left
-		drawVerticalLine  (box, xOrig + box.width - box.thickness, yOrig,                     box.notchLengthD, box.numNotchesD, -box.kerf/2, false, true);	//right
-    }
-
-    private void drawNotchedLine(Box box,
-                                 double x0, double y0,
-                                 double notchWidth,
-                                 int notchCount,
-                                 double cutwidth,
-                                 boolean flip, boolean smallside,
-                                 boolean tabs){
-    	double x = x0, y = y0;
-    	System.out.println("Horizonal side: "+notchCount+" steps @ ( "+x0+" , "+y0+" )");
-    	
-        for (int step = 0; step < notchCount; step++)
-        {
-            double height = box.thickness;
-            // XXX - Figure this bit out - if (tabs && step == 1) height *= 1.5;
-
-            y = (((step % 2) == 0) ^ flip) ? y0 : y0 + height;
-	
-			if (step == 0) {		//start first edge in the right place
-			    if (smallside) {
-                    drawLineByMm(x + height, y,
-                                 x + notchWidth + cutwidth, y);
-                } else {
-                    drawLineByMm(x, y,
-                                 x + notchWidth + cutwidth, y);
-                }
-			} else if (step == (notchCount - 1)) {	//shorter last edge
-			    drawLineByMm(x - cutwidth, y,
-                             x + notchWidth - height, y);
-			} else if (step % 2 == 0) {
-			    drawLineByMm(x - cutwidth, y,
-                             x + notchWidth + cutwidth, y);
-		    } else {
-			    drawLineByMm(x + cutwidth, y,
-                             x + notchWidth - cutwidth, y);
-		    }
-			
-			if (step < (notchCount - 1)) {
-			    if (step % 2 == 0) {
-					drawLineByMm(x + notchWidth + cutwidth, y0 + height,
-                                 x + notchWidth + cutwidth, y0);
-			    } else {
-					drawLineByMm(x + notchWidth - cutwidth, y0 + height,
-                                 x + notchWidth - cutwidth, y0);
-			    }
-			}
-			
-			x = x + notchWidth;
+		//draw the faces in order
+		for (BoxGeometry.Face face : faces) {
+			drawFace(face);
+			FacePattern pattern = options.patterns.get(face.name);
+			if (pattern != null) drawPattern(box, face, pattern);
 		}
     }
 
-
-
-	/**
-     * Draw one horizontal notched line
-     * @param x0			x-coord of the starting point of the line (lower left corner) 
-     * @param y0			y-coord of the starting point of the line (lower left corner)
-     * @param notchWidth	the width of each notch to draw in millimeters
-     * @param notchCount	the number of notches to draw along the edge
-     * @param notchHeight	the height of the notches to draw (the material thickness)
-     * @param cutwidth		the width of the laser beam to compensate for
-     * @param flip			should the first line (at x0,y0) be out or in
-     * @param smallside		should this stop short of the full height or not
-     * @param tabs          should include tabs for opening
+    /**
+     * Fill the inside of a face with a cut pattern.  The segments are streamed
+     * straight into long PDF paths, without the per-line stroke and debug output
+     * that drawLineByMm does.
+     * @param box		the box
+     * @param face		the face to fill
+     * @param pattern	the pattern to fill it with
      */
-    private void drawHorizontalLine(Box box,
-                                    double x0, double y0,
-                                    double notchWidth,
-                                    int notchCount,
-                                    double cutwidth,
-                                    boolean flip, boolean smallside,
-                                    boolean tabs){
-    	double x = x0, y = y0;
-    	System.out.println("Horizonal side: "+notchCount+" steps @ ( "+x0+" , "+y0+" )");
-    	
-        for (int step = 0; step < notchCount; step++)
-        {
-            double height = box.thickness;
-            // XXX - Figure this bit out - if (tabs && step == 1) height *= 1.5;
-
-            y = (((step % 2) == 0) ^ flip) ? y0 : y0 + height;
-	
-			if (step == 0) {		//start first edge in the right place
-			    if (smallside) {
-                    drawLineByMm(x + height, y,
-                                 x + notchWidth + cutwidth, y);
-                } else {
-                    drawLineByMm(x, y,
-                                 x + notchWidth + cutwidth, y);
-                }
-			} else if (step == (notchCount - 1)) {	//shorter last edge
-			    drawLineByMm(x - cutwidth, y,
-                             x + notchWidth - height, y);
-			} else if (step % 2 == 0) {
-			    drawLineByMm(x - cutwidth, y,
-                             x + notchWidth + cutwidth, y);
-		    } else {
-			    drawLineByMm(x + cutwidth, y,
-                             x + notchWidth - cutwidth, y);
-		    }
-			
-			if (step < (notchCount - 1)) {
-			    if (step % 2 == 0) {
-					drawLineByMm(x + notchWidth + cutwidth, y0 + height,
-                                 x + notchWidth + cutwidth, y0);
-			    } else {
-					drawLineByMm(x + notchWidth - cutwidth, y0 + height,
-                                 x + notchWidth - cutwidth, y0);
-			    }
+    private void drawPattern(Box box, BoxGeometry.Face face, FacePattern pattern) {
+    	final PdfContentByte cb = docPdfWriter.getDirectContent();
+		cb.setLineWidth(0f);
+		double[] area = FacePattern.fillArea(face, box, box.thickness);
+		long count = pattern.fill(area[0], area[1], area[2], area[3], new SegmentSink() {
+			private int inPath = 0;
+			public void line(double fromX, double fromY, double toX, double toY) {
+				cb.moveTo((float)(DPI*fromX), (float)(DPI*fromY));
+				cb.lineTo((float)(DPI*toX), (float)(DPI*toY));
+				if (++inPath == PATTERN_SEGMENTS_PER_STROKE) {
+					cb.stroke();
+					inPath = 0;
+				}
 			}
-			
-			x = x + notchWidth;
-		}
+		});
+		if (count % PATTERN_SEGMENTS_PER_STROKE != 0) cb.stroke();
+		System.out.println("Pattern: "+pattern.name+" on "+face.name+", "+count+" cuts");
     }
 
     /**
-     * Draw one vertical notched line
-     * @param x0			x-coord of the starting point of the line (lower left corner) 
-     * @param y0			y-coord of the starting point of the line (lower left corner)
-     * @param notchWidth	the width of each notch to draw in millimeters
-     * @param notchCount	the number of notches to draw along the edge
-     * @param notchHeight	the height of the notches to draw (the material thickness)
-     * @param cutwidth		the width of the laser beam to compensate for
-     * @param flip			should the first line (at x0,y0) be out or in
-     * @param smallside		should this stop short of the full height or not
+     * Draw the already computed edges of one face
+     * @param face	the face to draw
      */
-    private void drawVerticalLine(Box box,
-                                  double x0, double y0,
-                                  double notchWidth, int notchCount,
-                                  double cutwidth,
-                                  boolean flip, boolean smallside){
-		double x=x0,y=y0;
-        System.out.println("Vertical side: "+notchCount+" steps @ ( "+x0+" , "+y0+" )");
-	
-		for (int step=0;step<notchCount;step++) {
-			x=(((step%2)==0)^flip) ? x0 : x0+box.thickness;
-	
-			if (step==0) {
-				if(smallside) drawLineByMm(x,y+box.thickness,x,y+notchWidth+cutwidth);
-			    else drawLineByMm(x,y,x,y+notchWidth+cutwidth);
-			} else if (step==(notchCount-1)) {
-			    //g.moveTo(x,y+cutwidth); g.lineTo(x,y+notchWidth); g.stroke();
-				if(smallside) drawLineByMm(x,y-cutwidth,x,y+notchWidth-box.thickness);
-			    else drawLineByMm(x,y-cutwidth,x,y+notchWidth); 
-			} else if (step%2==0) {
-			    drawLineByMm(x,y-cutwidth,x,y+notchWidth+cutwidth);
-			} else {
-			    drawLineByMm(x,y+cutwidth,x,y+notchWidth-cutwidth);
-			}
-			
-			if (step<(notchCount-1)) {
-			    if (step%2==0) {
-			    	drawLineByMm(x0+box.thickness,y+notchWidth+cutwidth,x0,y+notchWidth+cutwidth);
-			    } else {
-			    	drawLineByMm(x0+box.thickness,y+notchWidth-cutwidth,x0,y+notchWidth-cutwidth);
-			    }
-			}
-			y=y+notchWidth;
-		}
+    private void drawFace(BoxGeometry.Face face) {
+    	for (EdgePath edge : face.edges) {
+    		System.out.println(edge.label);
+    		double[] c = edge.coords();
+    		int n = edge.lineCount()*4;
+    		for (int i = 0; i < n; i += 4) {
+    			drawLineByMm(c[i], c[i+1], c[i+2], c[i+3]);
+    		}
+    	}
     }
 
     /**
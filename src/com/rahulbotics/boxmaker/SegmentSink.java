@@ -0,0 +1,22 @@
+/*
+ * Something that line segments can be streamed into
+ *
+ */
+package com.rahulbotics.boxmaker;
+
+/**
+ * Receives line segments one at a time, so that big cut patterns can be handed
+ * straight to whatever is drawing them without building a list of lines first.
+ */
+interface SegmentSink {
+
+    /**
+     * Take one line segment (in the same units as the box)
+     * @param fromX	start x pos
+     * @param fromY	start y pos
+     * @param toX	end x pos
+     * @param toY	end y pos
+     */
+    void line(double fromX, double fromY, double toX, double toY);
+
+}
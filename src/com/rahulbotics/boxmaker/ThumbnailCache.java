@@ -0,0 +1,127 @@
+/*
+ * Keeps drawn preview images around
+ *
+ */
+package com.rahulbotics.boxmaker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of PNG previews.  Previews are keyed by the box's dimensions after the
+ * Box constructor has normalized them (kerf added, notches evened out), so any two
+ * requests that would draw the same lines share an entry.
+ * <p>
+ * Recently used previews are kept in memory, up to a total number of bytes.  If
+ * the cache has a directory, every preview is also saved there as a PNG named by
+ * the SHA-256 of its key, and looked for there before drawing it.  That lets the
+ * previews outlive the program, which matters since each command line run only
+ * draws one.
+ */
+class ThumbnailCache {
+
+    // how many bytes of previews to keep in memory by default
+    static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private final Map<String,byte[]> entries =
+        new LinkedHashMap<String,byte[]>(16, 0.75f, true);
+    private final long maxBytes;
+    private long bytes = 0;
+    // where previews are saved, or null to only keep them in memory
+    private final File dir;
+    // the files are written to the side and renamed in, so nobody reads half a PNG
+    private final DocumentOutput.Options fileOptions = new DocumentOutput.Options();
+
+    /**
+     * Create a cache
+     * @param maxBytes	how many bytes of previews to keep in memory before dropping the oldest
+     * @param dir		the directory to save previews in, or null to only keep them in memory
+     * @throws IllegalArgumentException	if the directory can't be created
+     */
+    ThumbnailCache(long maxBytes, File dir) {
+        this.maxBytes = maxBytes;
+        this.dir = dir;
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalArgumentException("Can't create thumbnail cache directory "+dir);
+        }
+        fileOptions.atomicRename = true;
+    }
+
+    /**
+     * Get the PNG preview of a box, drawing it if it isn't cached yet.  The drawing
+     * is done outside the lock so one slow preview doesn't hold up the others.
+     * @param box		the box
+     * @param widthPx	the width of the image in pixels
+     * @param heightPx	the height of the image in pixels
+     * @param patterns	the pattern to fill each face with, keyed by face name
+     * @return			the PNG file contents (shared, so don't change it)
+     */
+    byte[] get(Box box, int widthPx, int heightPx, Map<String,FacePattern> patterns) {
+        String key = key(box, widthPx, heightPx, patterns);
+        synchronized (entries) {
+            byte[] png = entries.get(key);
+            if (png != null) return png;
+        }
+        File file = (dir != null) ? new File(dir, Renderer.sha256Hex(key) + ".png") : null;
+        byte[] png = null;
+        if (file != null && file.isFile()) {
+            try {
+                png = Files.readAllBytes(file.toPath());
+            } catch (IOException e) {
+                // just draw it again
+            }
+        }
+        if (png == null) {
+            png = ThumbnailRenderer.renderPng(box, widthPx, heightPx, patterns);
+            if (file != null) {
+                try {
+                    DocumentOutput.writeFile(file.getPath(), fileOptions, png);
+                } catch (IOException e) {
+                    // the preview is still good, it just won't be saved for next time
+                }
+            }
+        }
+        add(key, png);
+        return png;
+    }
+
+    /**
+     * Put a preview in memory, dropping the least recently used ones until they fit
+     */
+    private void add(String key, byte[] png) {
+        synchronized (entries) {
+            byte[] old = entries.put(key, png);
+            if (old != null) bytes -= old.length;
+            bytes += png.length;
+            Iterator<byte[]> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Build the cache key from everything that changes the picture.  The version
+     * is in there so saved previews from an older drawing aren't used.
+     */
+    static String key(Box box, int widthPx, int heightPx, Map<String,FacePattern> patterns) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(BoxMakerConstants.VERSION);
+        sb.append('|').append(widthPx).append('x').append(heightPx);
+        sb.append('|').append(box.notchLengthW).append('*').append(box.numNotchesW);
+        sb.append('|').append(box.notchLengthH).append('*').append(box.numNotchesH);
+        sb.append('|').append(box.notchLengthD).append('*').append(box.numNotchesD);
+        sb.append('|').append(box.thickness);
+        sb.append('|').append(box.kerf);
+        for (String face : BoxGeometry.FACE_NAMES) {
+            FacePattern pattern = patterns.get(face);
+            if (pattern != null) sb.append('|').append(face).append('=').append(pattern.spec());
+        }
+        return sb.toString();
+    }
+}
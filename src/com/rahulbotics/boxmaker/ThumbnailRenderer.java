@@ -0,0 +1,128 @@
+/*
+ * Draws small preview images of a box
+ *
+ */
+package com.rahulbotics.boxmaker;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Draws the same faces the PDF renderer does straight into a PNG with Java2D,
+ * for previews.  The layout is scaled to fit the requested pixel size (keeping
+ * its shape) and centered, with the page's y axis flipped to match the PDF.
+ */
+class ThumbnailRenderer {
+
+    static {
+        // we never open a window, so don't go looking for a display
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+    }
+
+    /**
+     * Draw a preview of the box
+     * @param box		the box
+     * @param widthPx	the width of the image in pixels
+     * @param heightPx	the height of the image in pixels
+     * @param patterns	the pattern to fill each face with, keyed by face name
+     * @return			the image
+     */
+    static BufferedImage render(Box box, int widthPx, int heightPx,
+                                Map<String,FacePattern> patterns) {
+        if (widthPx <= 0 || heightPx <= 0) {
+            throw new IllegalArgumentException("Thumbnail size must be positive: "+
+                                               widthPx+" x "+heightPx);
+        }
+        double margin = BoxGeometry.MARGIN;
+        BoxGeometry.Face[] faces = BoxGeometry.computeFaces(box, margin);
+        double pageWidth = BoxGeometry.layoutWidth(box, margin);
+        double pageHeight = BoxGeometry.layoutHeight(box, margin);
+
+        BufferedImage image = new BufferedImage(widthPx, heightPx, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, widthPx, heightPx);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            g.setColor(Color.BLACK);
+            g.setStroke(new BasicStroke(1f));
+
+            // fit the page in the image and flip it so y goes up like it does in the PDF
+            double scale = Math.min(widthPx / pageWidth, heightPx / pageHeight);
+            AffineTransform toPixels = new AffineTransform();
+            toPixels.translate((widthPx - pageWidth*scale) / 2, (heightPx + pageHeight*scale) / 2);
+            toPixels.scale(scale, -scale);
+
+            // build the lines in page units and transform the whole path at the end,
+            // so the stroke stays one pixel wide
+            final Path2D.Double path = new Path2D.Double();
+            for (BoxGeometry.Face face : faces) {
+                for (EdgePath edge : face.edges) {
+                    double[] c = edge.coords();
+                    int n = edge.lineCount()*4;
+                    for (int i = 0; i < n; i += 4) {
+                        path.moveTo(c[i], c[i+1]);
+                        path.lineTo(c[i+2], c[i+3]);
+                    }
+                }
+                FacePattern pattern = patterns.get(face.name);
+                if (pattern != null) {
+                    double[] area = FacePattern.fillArea(face, box, box.thickness);
+                    pattern.fill(area[0], area[1], area[2], area[3], new SegmentSink() {
+                        public void line(double fromX, double fromY, double toX, double toY) {
+                            path.moveTo(fromX, fromY);
+                            path.lineTo(toX, toY);
+                        }
+                    });
+                }
+            }
+            path.transform(toPixels);
+            g.draw(path);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Draw a preview of the box as PNG bytes
+     * @param box		the box
+     * @param widthPx	the width of the image in pixels
+     * @param heightPx	the height of the image in pixels
+     * @param patterns	the pattern to fill each face with, keyed by face name
+     * @return			the PNG file contents
+     */
+    static byte[] renderPng(Box box, int widthPx, int heightPx,
+                            Map<String,FacePattern> patterns) {
+        BufferedImage image = render(box, widthPx, heightPx, patterns);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        try {
+            // keep ImageIO from going through a temporary file on disk
+            ImageOutputStream imageOut = new MemoryCacheImageOutputStream(out);
+            try {
+                ImageIO.write(image, "png", imageOut);
+            } finally {
+                imageOut.close();
+            }
+        } catch (IOException e) {
+            // can't happen writing to memory
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+}